@@ -1,103 +1,842 @@
 package bloomfilter;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.function.Function;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
-public class BloomFilter<E> {
+public class BloomFilter<E> implements MembershipFilter<E> {
     protected static final int H_MUL = 31;
 
-    private byte[] bits;
-    private Function<Integer, Integer>[] hf;
+    /**
+     * Number of hash functions used by the raw byte-count constructor (false positive rate of 1%).
+     */
+    static final int DEFAULT_NUM_HASHES = (int) -(Math.log(0.01) / Math.log(2));
+
+    /**
+     * Number of keys processed together by the batch operations.
+     */
+    static final int BATCH_SIZE = 256;
+
+    /**
+     * Minimum number of elements for which {@link #addAllParallel(Spliterator)} uses the fork-join pool;
+     * below it, the cost of copying the bit vector for every worker outweighs the gain.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * Minimum number of elements added by one task of a parallel build.
+     */
+    private static final int MIN_TASK_SIZE = 1 << 12;
+
+    /**
+     * Largest number of 64-bit words a filter may use.
+     */
+    private static final int MAX_WORDS = Integer.MAX_VALUE - 8;
+
+    /**
+     * Magic number at the start of every serialized filter ("BLMF").
+     */
+    static final int MAGIC = 0x424c4d46;
+
+    /**
+     * Version of the serialized format.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * Size of the serialized header in bytes; a multiple of 8, so that the words following it are aligned.
+     */
+    static final int HEADER_SIZE = 32;
+
+    /**
+     * The bit vector; null if a subclass provides its own storage.
+     */
+    protected final long[] bits;
+    private final long numBits;
+    private final int numHashes;
+    private final HashStrategy strategy;
+    private final long seed;
+
+    /**
+     * Funnel that hashes elements with MurmurHash3; null if elements are hashed by their hashCode.
+     */
+    private final Funnel<? super E> funnel;
 
     public BloomFilter(DataInput input) throws IOException {
+        this(input, null);
+    }
+
+    /**
+     * Read a filter that was created with the given funnel (or without one, if it is null).
+     */
+    public BloomFilter(DataInput input, Funnel<? super E> funnel) throws IOException {
         // TODO -Done
 
-        int numByte = input.readInt();
-        this.bits = new byte[numByte];
-        
-        input.readFully(this.bits);
-
-        final int vectorSize = numByte * Byte.SIZE;
-        int numHashes = (int) -(Math.log(0.01) / Math.log(2));
-        this.hf = new Function[numHashes];
-        for(int i = 0; i < numHashes; i++) {
-            int j = i;
-            this.hf[i] = k -> {
-                int hash = (j * H_MUL * k) % vectorSize;
-                if (hash < 0) {
-                    hash += vectorSize;
-                }
-                return hash;
-            };
+        this(Header.read(input), true, funnel);
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = input.readLong();
         }
-
     }
 
     public BloomFilter(final int numBytes) {
-        final int vecSize = numBytes * Byte.SIZE;
-        this.bits = new byte[numBytes];
-        // False positive rate of 1%:
-        this.hf = new Function[(int) -(Math.log(0.01) / Math.log(2))];
-        for (int i = 0; i < this.hf.length; i++) {
-            final int j = i;
-            this.hf[i] = k -> (((j * H_MUL * k) % vecSize) + vecSize) % vecSize;
+        this((long) numBytes * Byte.SIZE, DEFAULT_NUM_HASHES, HashStrategy.MULTIPLY_MOD);
+    }
+
+    /**
+     * Create an empty filter with the given number of bits and hash functions.
+     */
+    public BloomFilter(long numBits, int numHashes, HashStrategy strategy) {
+        this(numBits, numHashes, strategy, 0L);
+    }
+
+    /**
+     * Create an empty filter with the given number of bits and hash functions, whose hash functions
+     * are randomized with the given seed.
+     */
+    public BloomFilter(long numBits, int numHashes, HashStrategy strategy, long seed) {
+        this(numBits, numHashes, strategy, seed, null);
+    }
+
+    /**
+     * Create an empty filter that hashes its elements by feeding them through the funnel into MurmurHash3
+     * (x64, 128 bit), seeded with the given seed. If funnel is null, elements are hashed by their hashCode.
+     */
+    public BloomFilter(long numBits, int numHashes, HashStrategy strategy, long seed, Funnel<? super E> funnel) {
+        this(new Header(numBits, numHashes, strategy, seed, funnel != null), true, funnel);
+    }
+
+    /**
+     * Create a filter with the parameters of the header. If allocate is false, the subclass provides the storage
+     * by overriding {@link #word(int)}, {@link #orWord(int, long)} and {@link #reset()}.
+     */
+    BloomFilter(Header header, boolean allocate, Funnel<? super E> funnel) {
+        if (header.funnelHashing != (funnel != null)) {
+            throw new IllegalArgumentException(header.funnelHashing
+                    ? "Filter hashes elements with a funnel, but none was given"
+                    : "Filter hashes elements by their hashCode, but a funnel was given");
         }
+
+        this.bits = allocate ? new long[numWords(header.numBits)] : null;
+        this.numBits = header.numBits;
+        this.numHashes = header.numHashes;
+        this.strategy = header.strategy;
+        this.seed = header.seed;
+        this.funnel = funnel;
     }
 
     /**
-     * Serialize this filter into the data output, packing 8 bytes from the bits vector into one output byte.
+     * The parameters of a filter, as stored in the first {@link #HEADER_SIZE} bytes of its serialized form:
+     * magic (int), version (short), strategy (byte), hash function (byte: 0 = hashCode, 1 = MurmurHash3 of
+     * a funnel), number of hash functions (int), reserved (int), number of bits (long), seed (long).
      */
+    static final class Header {
+        final long numBits;
+        final int numHashes;
+        final HashStrategy strategy;
+        final long seed;
+        final boolean funnelHashing;
+
+        Header(long numBits, int numHashes, HashStrategy strategy, long seed, boolean funnelHashing) {
+            if (numBits <= 0 || numWords(numBits) > MAX_WORDS) {
+                throw new IllegalArgumentException("Invalid number of bits: " + numBits);
+            }
+            if (numHashes <= 0) {
+                throw new IllegalArgumentException("Invalid number of hash functions: " + numHashes);
+            }
+            if (!strategy.isValidNumBits(numBits)) {
+                throw new IllegalArgumentException("Invalid number of bits for " + strategy + ": " + numBits);
+            }
+
+            this.numBits = numBits;
+            this.numHashes = numHashes;
+            this.strategy = strategy;
+            this.seed = seed;
+            this.funnelHashing = funnelHashing;
+        }
+
+        static Header read(DataInput input) throws IOException {
+            int magic = input.readInt();
+            if (magic != MAGIC) {
+                throw new IOException("Not a bloom filter: bad magic number " + Integer.toHexString(magic));
+            }
+            int version = input.readUnsignedShort();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported bloom filter format version: " + version);
+            }
+            int strategy = input.readUnsignedByte();
+            int hashFunction = input.readUnsignedByte();
+            if (hashFunction > 1) {
+                throw new IOException("Unknown hash function: " + hashFunction);
+            }
+            int numHashes = input.readInt();
+            input.readInt();
+            long numBits = input.readLong();
+            long seed = input.readLong();
+
+            try {
+                return new Header(numBits, numHashes, HashStrategy.fromOrdinal(strategy), seed, hashFunction == 1);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt filter header: " + e.getMessage(), e);
+            }
+        }
+
+        void write(DataOutput output) throws IOException {
+            output.writeInt(MAGIC);
+            output.writeShort(FORMAT_VERSION);
+            output.writeByte(strategy.ordinal());
+            output.writeByte(funnelHashing ? 1 : 0);
+            output.writeInt(numHashes);
+            output.writeInt(0);
+            output.writeLong(numBits);
+            output.writeLong(seed);
+        }
+    }
+
+    /**
+     * Create a filter sized for the expected number of insertions, so that the false positive rate stays
+     * at (or below) fpp as long as no more than expectedInsertions distinct elements are added.
+     * <p>
+     * Uses the optimal bit count m = -n ln(p) / ln(2)^2, rounded up to whole 64-bit words, and the optimal
+     * number of hash functions k = m/n ln(2).
+     */
+    public static <E> BloomFilter<E> create(long expectedInsertions, double fpp) {
+        return sized(expectedInsertions, fpp,
+                (numBits, numHashes) -> new BloomFilter<>(numBits, numHashes, HashStrategy.DOUBLE_HASHING));
+    }
+
+    /**
+     * Create a filter sized for the expected number of insertions and false positive rate, that hashes its
+     * elements with the funnel into 128 bits, see {@link HashStrategy#DOUBLE_HASHING}. Unlike hashCode based
+     * filters, elements with equal hash codes do not collide.
+     */
+    public static <E> BloomFilter<E> create(Funnel<? super E> funnel, long expectedInsertions, double fpp) {
+        return sized(expectedInsertions, fpp, (numBits, numHashes) ->
+                new BloomFilter<>(numBits, numHashes, HashStrategy.DOUBLE_HASHING, 0L, funnel));
+    }
+
+    /**
+     * Constructor of a filter with the given number of bits and hash functions, see {@link #sized}.
+     */
+    @FunctionalInterface
+    protected interface Sizing<F> {
+        F create(long numBits, int numHashes);
+    }
+
+    /**
+     * Create a filter with the optimal number of bits and hash functions for the expected number of insertions
+     * and false positive rate, see {@link #create(long, double)}. Used by the factory methods of all kinds of
+     * filters, which only supply their constructor.
+     */
+    protected static <F extends BloomFilter<?>> F sized(long expectedInsertions, double fpp, Sizing<F> constructor) {
+        long n = checkedInsertions(expectedInsertions, fpp);
+        long numBits = optimalNumBits(n, fpp);
+        return constructor.create(numBits, optimalNumHashes(n, numBits));
+    }
+
+    /**
+     * Build a filter sized for the expected number of insertions and false positive rate from the elements
+     * of the spliterator, in parallel; see {@link #addAllParallel(Spliterator)}.
+     */
+    public static <E> BloomFilter<E> buildParallel(Spliterator<? extends E> elements, long expectedInsertions,
+                                                   double fpp) {
+        BloomFilter<E> filter = create(expectedInsertions, fpp);
+        filter.addAllParallel(elements);
+        return filter;
+    }
+
+    /**
+     * Build a filter that hashes its elements with the funnel from the elements of the spliterator, in parallel.
+     */
+    public static <E> BloomFilter<E> buildParallel(Funnel<? super E> funnel, Spliterator<? extends E> elements,
+                                                   long expectedInsertions, double fpp) {
+        BloomFilter<E> filter = create(funnel, expectedInsertions, fpp);
+        filter.addAllParallel(elements);
+        return filter;
+    }
+
+    /**
+     * Validate the sizing parameters of a filter; returns the number of insertions to size for (at least 1).
+     */
+    static long checkedInsertions(long expectedInsertions, double fpp) {
+        if (expectedInsertions < 0) {
+            throw new IllegalArgumentException("Negative number of expected insertions: " + expectedInsertions);
+        }
+        if (!(fpp > 0.0 && fpp < 1.0)) {
+            throw new IllegalArgumentException("False positive rate must be in (0, 1): " + fpp);
+        }
+        return Math.max(1, expectedInsertions);
+    }
+
+    /**
+     * Optimal number of bits for n elements and false positive rate p, rounded up to a multiple of 64.
+     * Throws an IllegalArgumentException if that exceeds the largest bit vector a filter can hold.
+     */
+    static long optimalNumBits(long n, double p) {
+        double bits = Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        if (bits > (double) MAX_WORDS * Long.SIZE) {
+            throw new IllegalArgumentException("Too many bits for " + n + " insertions at false positive rate "
+                    + p + ": " + bits);
+        }
+        return Math.max(Long.SIZE, ((long) bits + Long.SIZE - 1) / Long.SIZE * Long.SIZE);
+    }
+
+    /**
+     * Optimal number of hash functions for n elements in m bits.
+     */
+    static int optimalNumHashes(long n, long m) {
+        return Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    /**
+     * Create an empty filter of the same kind and hash strategy as this one, sized for the expected number of
+     * insertions and false positive rate. Used by {@link BloomList} to grow its filter.
+     */
+    @Override
+    public BloomFilter<E> newInstance(long expectedInsertions, double fpp) {
+        long n = checkedInsertions(expectedInsertions, fpp);
+        long numBits = newNumBits(n, fpp);
+        return newFilter(numBits, optimalNumHashes(n, numBits));
+    }
+
+    /**
+     * Create an empty filter of the same kind as this one, with the given number of bits and hash functions and
+     * the hash strategy, seed and funnel of this one. Subclasses override this to supply their own constructor.
+     */
+    protected BloomFilter<E> newFilter(long numBits, int numHashes) {
+        return new BloomFilter<>(numBits, numHashes, strategy, seed, funnel);
+    }
+
+    /**
+     * Optimal number of bits for a new filter with the hash strategy of this one.
+     */
+    long newNumBits(long n, double fpp) {
+        long numBits = optimalNumBits(n, fpp);
+        if (!strategy.isValidNumBits(numBits)) {
+            // Blocked strategies need whole blocks
+            numBits = (numBits + HashStrategy.BLOCK_BITS - 1) / HashStrategy.BLOCK_BITS * HashStrategy.BLOCK_BITS;
+        }
+        return numBits;
+    }
+
+    /**
+     * Create an empty filter with the same parameters and of the same kind as this one, which can be merged
+     * into it with {@link #union(BloomFilter)}.
+     */
+    final BloomFilter<E> emptyCopy() {
+        return newFilter(numBits, numHashes);
+    }
+
+    static int numWords(long numBits) {
+        return (int) Math.min(Integer.MAX_VALUE, (numBits + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    /**
+     * Serialize this filter into the data output: a versioned header of {@link #HEADER_SIZE} bytes holding the
+     * hash strategy, the number of hash functions, the number of bits and the seed, followed by the bit vector
+     * as big-endian 64-bit words. A file holding this format can be mapped with {@link #map(Path, boolean)}.
+     */
+    @Override
     public void close(DataOutput output) throws IOException {
         // TODO - Done - Should work!!
 
-        output.writeInt(this.bits.length);
-        output.write(this.bits);
+        new Header(numBits, numHashes, strategy, seed, funnel != null).write(output);
+        int numWords = numWords(numBits);
+        for (int i = 0; i < numWords; i++) {
+            output.writeLong(word(i));
+        }
+    }
+
+    /**
+     * Map a filter file written by {@link #close(DataOutput)} read-only into memory.
+     */
+    public static <E> MappedBloomFilter<E> map(Path path) throws IOException {
+        return map(path, false, null);
+    }
+
+    /**
+     * Map a filter file written by {@link #close(DataOutput)} into memory, without copying the bit vector to
+     * the heap. If writable is set, adds and resets write through to the file.
+     */
+    public static <E> MappedBloomFilter<E> map(Path path, boolean writable) throws IOException {
+        return map(path, writable, null);
+    }
+
+    /**
+     * Map a filter file that was created with the given funnel (or without one, if it is null) into memory.
+     */
+    public static <E> MappedBloomFilter<E> map(Path path, boolean writable, Funnel<? super E> funnel)
+            throws IOException {
+        OpenOption[] options = writable
+                ? new OpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new OpenOption[]{StandardOpenOption.READ};
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            ByteBuffer headerBytes = ByteBuffer.allocate(HEADER_SIZE);
+            while (headerBytes.hasRemaining()) {
+                if (channel.read(headerBytes, headerBytes.position()) < 0) {
+                    throw new EOFException("Truncated bloom filter header: " + path);
+                }
+            }
+            Header header = Header.read(new DataInputStream(new ByteArrayInputStream(headerBytes.array())));
+
+            long size = (long) numWords(header.numBits) * Long.BYTES;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Bloom filter too large to be mapped: " + header.numBits + " bits");
+            }
+            if (channel.size() < HEADER_SIZE + size) {
+                throw new EOFException("Truncated bloom filter: " + path);
+            }
+
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(
+                    writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, HEADER_SIZE, size);
+            return new MappedBloomFilter<>(header, buffer, funnel);
+        }
     }
 
     /**
      * Add an element to this filter.
      */
+    @Override
     public void add(E element) {
         // TODO - Done
 
-        int codeHash = element.hashCode();
-        for (Function<Integer, Integer> hashFunction : this.hf) {
-            int i = hashFunction.apply(codeHash);
-            int byteIndex = i / 8;
-            int bitPos = i % 8;
-            bits[byteIndex] |= (1 << bitPos);
+        if (funnel == null) {
+            long h1 = strategy.hashCodeH1(element.hashCode(), seed);
+            addHash(h1, strategy.hashCodeH2(h1));
+        } else {
+            Murmur3Hasher hasher = Murmur3Hasher.hash(funnel, element, seed);
+            addHash(hasher.h1(), hasher.h2());
         }
     }
 
     /**
      * Returns false, if the element was definitely not added to the filter, true otherwise.
      */
+    @Override
     public boolean containsMaybe(E element) {
         // TODO - Done
 
-        int codeHash = element.hashCode();
-        for(Function<Integer, Integer> hashFunction : this.hf) {
-            int i = hashFunction.apply(codeHash);
-            int byteIndex = i / 8;
-            int bitPos = i % 8;
-            boolean result = (bits[byteIndex] & (1 << bitPos)) != 0;
-            if (!result) {
+        if (funnel == null) {
+            long h1 = strategy.hashCodeH1(element.hashCode(), seed);
+            return containsHash(h1, strategy.hashCodeH2(h1));
+        }
+        Murmur3Hasher hasher = Murmur3Hasher.hash(funnel, element, seed);
+        return containsHash(hasher.h1(), hasher.h2());
+    }
+
+    /**
+     * Add the element with the given 128-bit hash, see {@link HashStrategy}.
+     */
+    protected void addHash(long h1, long h2) {
+        for (int i = 0; i < numHashes; i++) {
+            setBit(index(h1, h2, i));
+        }
+    }
+
+    /**
+     * Check the element with the given 128-bit hash, see {@link HashStrategy}.
+     */
+    protected boolean containsHash(long h1, long h2) {
+        for (int i = 0; i < numHashes; i++) {
+            long index = index(h1, h2, i);
+            if ((word((int) (index >>> 6)) & (1L << index)) == 0) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * Add a batch of elements, given by their hash codes, to this filter. The result is the same as adding
+     * {@code Integer}s with these values one by one (through {@link Funnels#INTEGER}, if the filter uses a funnel).
+     */
+    public void addAll(int[] hashes) {
+        Batch batch = new Batch(Math.min(BATCH_SIZE, hashes.length));
+        for (int from = 0; from < hashes.length; from += BATCH_SIZE) {
+            int n = Math.min(BATCH_SIZE, hashes.length - from);
+            for (int j = 0; j < n; j++) {
+                batch.hashInt(j, hashes[from + j]);
+            }
+            addBatch(batch, n);
+        }
+    }
+
+    /**
+     * Add a batch of {@code long} keys to this filter, as if they were added as {@code Long}s
+     * (through {@link Funnels#LONG}, if the filter uses a funnel).
+     */
+    public void addAll(long[] keys) {
+        Batch batch = new Batch(Math.min(BATCH_SIZE, keys.length));
+        for (int from = 0; from < keys.length; from += BATCH_SIZE) {
+            int n = Math.min(BATCH_SIZE, keys.length - from);
+            for (int j = 0; j < n; j++) {
+                batch.hashLong(j, keys[from + j]);
+            }
+            addBatch(batch, n);
+        }
+    }
+
+    /**
+     * Check a batch of elements, given by their hash codes: out[j] is set to the result of containsMaybe for an
+     * {@code Integer} with value hashes[j].
+     */
+    public void containsMaybeAll(int[] hashes, boolean[] out) {
+        if (out.length < hashes.length) {
+            throw new IllegalArgumentException("Output array too small: " + out.length + " < " + hashes.length);
+        }
+
+        Batch batch = new Batch(Math.min(BATCH_SIZE, hashes.length));
+        for (int from = 0; from < hashes.length; from += BATCH_SIZE) {
+            int n = Math.min(BATCH_SIZE, hashes.length - from);
+            for (int j = 0; j < n; j++) {
+                batch.hashInt(j, hashes[from + j]);
+            }
+            containsBatch(batch, n, out, from);
+        }
+    }
+
+    /**
+     * Check a batch of {@code long} keys, as if they were {@code Long}s: out[j] is set to the result of
+     * containsMaybe for keys[j].
+     */
+    public void containsMaybeAll(long[] keys, boolean[] out) {
+        if (out.length < keys.length) {
+            throw new IllegalArgumentException("Output array too small: " + out.length + " < " + keys.length);
+        }
+
+        Batch batch = new Batch(Math.min(BATCH_SIZE, keys.length));
+        for (int from = 0; from < keys.length; from += BATCH_SIZE) {
+            int n = Math.min(BATCH_SIZE, keys.length - from);
+            for (int j = 0; j < n; j++) {
+                batch.hashLong(j, keys[from + j]);
+            }
+            containsBatch(batch, n, out, from);
+        }
+    }
+
+    /**
+     * Scratch space of the batch operations: the element hashes and the bit indexes of one probe.
+     */
+    private final class Batch {
+        final long[] h1;
+        final long[] h2;
+        final long[] indexes;
+
+        Batch(int size) {
+            this.h1 = new long[size];
+            this.h2 = new long[size];
+            this.indexes = new long[size];
+        }
+
+        void hashInt(int j, int value) {
+            if (funnel == null) {
+                h1[j] = strategy.hashCodeH1(value, seed);
+                h2[j] = strategy.hashCodeH2(h1[j]);
+            } else {
+                Murmur3Hasher hasher = new Murmur3Hasher(seed);
+                hasher.putInt(value);
+                hasher.finish();
+                h1[j] = hasher.h1();
+                h2[j] = hasher.h2();
+            }
+        }
+
+        void hashLong(int j, long value) {
+            if (funnel == null) {
+                hashInt(j, Long.hashCode(value));
+            } else {
+                Murmur3Hasher hasher = new Murmur3Hasher(seed);
+                hasher.putLong(value);
+                hasher.finish();
+                h1[j] = hasher.h1();
+                h2[j] = hasher.h2();
+            }
+        }
+    }
+
+    /**
+     * Add the first n elements of the batch. For every probe, the indexes of the whole batch are computed first,
+     * so that the following memory accesses are independent of each other.
+     */
+    private void addBatch(Batch batch, int n) {
+        for (int i = 0; i < numHashes; i++) {
+            strategy.indexes(batch.h1, batch.h2, i, numBits, batch.indexes, n);
+            for (int j = 0; j < n; j++) {
+                setBit(batch.indexes[j]);
+            }
+        }
+    }
+
+    /**
+     * Check the first n elements of the batch and store the results in out, starting at outOffset.
+     * All probes are evaluated without branching on earlier results, so that the loads of different elements
+     * can overlap.
+     */
+    private void containsBatch(Batch batch, int n, boolean[] out, int outOffset) {
+        Arrays.fill(out, outOffset, outOffset + n, true);
+        for (int i = 0; i < numHashes; i++) {
+            strategy.indexes(batch.h1, batch.h2, i, numBits, batch.indexes, n);
+            for (int j = 0; j < n; j++) {
+                long index = batch.indexes[j];
+                out[outOffset + j] &= ((word((int) (index >>> 6)) >>> index) & 1L) != 0;
+            }
+        }
+    }
+
+    /**
+     * Add all elements of the spliterator. Large inputs are split on the common fork-join pool: every worker
+     * thread adds its parts to a private empty copy of this filter, and the copies are OR-ed into this filter
+     * at the end, so the workers never write to shared memory. This needs one extra bit vector per worker.
+     */
+    public void addAllParallel(Spliterator<? extends E> elements) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long size = elements.estimateSize();
+        if (parallelism < 2 || size < PARALLEL_THRESHOLD) {
+            elements.forEachRemaining(this::add);
+            return;
+        }
+
+        Map<Thread, BloomFilter<E>> partials = new ConcurrentHashMap<>();
+        long taskSize = Math.max(MIN_TASK_SIZE, size / (parallelism * 4L));
+        ForkJoinPool.commonPool().invoke(new AddTask<>(this, elements, taskSize, partials));
+        for (BloomFilter<E> partial : partials.values()) {
+            union(partial);
+        }
+    }
+
+    /**
+     * Reset the filter and add all given elements, in parallel if there are many of them;
+     * see {@link #addAllParallel(Spliterator)}.
+     */
+    @Override
+    public void rebuild(Collection<? extends E> elements) {
+        reset();
+        addAllParallel(elements.spliterator());
+    }
+
+    /**
+     * Adds the elements of a spliterator to the partial filter of the current worker thread, splitting it
+     * until the parts are small enough.
+     */
+    private static final class AddTask<E> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient BloomFilter<E> filter;
+        private final transient Spliterator<? extends E> elements;
+        private final long taskSize;
+        private final transient Map<Thread, BloomFilter<E>> partials;
+
+        AddTask(BloomFilter<E> filter, Spliterator<? extends E> elements, long taskSize,
+                Map<Thread, BloomFilter<E>> partials) {
+            this.filter = filter;
+            this.elements = elements;
+            this.taskSize = taskSize;
+            this.partials = partials;
+        }
+
+        @Override
+        protected void compute() {
+            Spliterator<? extends E> prefix;
+            if (elements.estimateSize() > taskSize && (prefix = elements.trySplit()) != null) {
+                invokeAll(new AddTask<>(filter, prefix, taskSize, partials),
+                        new AddTask<>(filter, elements, taskSize, partials));
+                return;
+            }
+            BloomFilter<E> partial = partials.computeIfAbsent(Thread.currentThread(), t -> filter.emptyCopy());
+            elements.forEachRemaining(partial::add);
+        }
+    }
+
+    /**
+     * Add all elements of the other filter to this one by OR-ing the bit vectors; the result is the same as
+     * adding the elements of both filters to one. Both filters must have identical parameters (number of bits,
+     * hash functions, hash strategy, seed and funnel), e.g. created with the same factory arguments.
+     *
+     * @throws IllegalArgumentException if the parameters of the filters differ
+     */
+    public void union(BloomFilter<? extends E> other) {
+        checkCompatible(other);
+        int numWords = numWords(numBits);
+        for (int i = 0; i < numWords; i++) {
+            orWord(i, other.word(i));
+        }
+    }
+
+    /**
+     * Keep only the bits that are also set in the other filter, which must have identical parameters.
+     * The result contains all elements that were added to both filters, but its false positive rate is
+     * usually higher than that of a filter built from just these elements.
+     *
+     * @throws IllegalArgumentException if the parameters of the filters differ
+     */
+    public void intersect(BloomFilter<? extends E> other) {
+        checkCompatible(other);
+        int numWords = numWords(numBits);
+        for (int i = 0; i < numWords; i++) {
+            andWord(i, other.word(i));
+        }
+    }
+
+    private void checkCompatible(BloomFilter<?> other) {
+        if (other.numBits != numBits || other.numHashes != numHashes || other.strategy != strategy
+                || other.seed != seed || !Objects.equals(other.funnel, funnel)) {
+            throw new IllegalArgumentException("Cannot merge filters with different parameters: "
+                    + describe() + " and " + other.describe());
+        }
+    }
+
+    private String describe() {
+        return strategy + "(bits=" + numBits + ", hashes=" + numHashes + ", seed=" + seed
+                + (funnel != null ? ", funnel" : "") + ")";
+    }
+
     /**
      * Reset the state of the bloom filter.
      */
+    @Override
     public void reset() {
         // TODO - Done
-        Arrays.fill(bits, (byte) 0);
+        Arrays.fill(bits, 0L);
         return;
     }
+
+    /**
+     * Expected false positive rate after the given number of distinct elements were added:
+     * (1 - e^(-kn/m))^k.
+     */
+    @Override
+    public double expectedFpp(long insertions) {
+        return Math.pow(-Math.expm1(-(double) numHashes * insertions / numBits), numHashes);
+    }
+
+    /**
+     * Number of set bits in the bit vector.
+     */
+    public long bitCount() {
+        long count = 0;
+        int numWords = numWords(numBits);
+        for (int i = 0; i < numWords; i++) {
+            count += Long.bitCount(word(i));
+        }
+        return count;
+    }
+
+    /**
+     * Fraction of set bits in the bit vector. A filter sized with {@link #create(long, double)} is about half
+     * full when it holds the expected number of elements; well above that, it is saturated.
+     */
+    public double fillRatio() {
+        return (double) bitCount() / numBits;
+    }
+
+    /**
+     * Estimated number of distinct elements in this filter, derived from the number of set bits X:
+     * -m/k ln(1 - X/m) (Swamidass and Baldi). Long.MAX_VALUE if all bits are set.
+     * For blocked filters, whose elements are not spread evenly over the bits, this is an underestimate.
+     */
+    public long approximateElementCount() {
+        return Math.round(-(double) numBits / numHashes * Math.log1p(-fillRatio()));
+    }
+
+    /**
+     * False positive rate in the current state: the probability that all k probes of an absent element hit
+     * set bits, i.e. fillRatio^k. Slightly underestimates the rate of blocked filters.
+     */
+    @Override
+    public double currentFpp() {
+        return Math.pow(fillRatio(), numHashes);
+    }
+
+    /**
+     * Number of distinct elements that can be added before the expected false positive rate exceeds fpp.
+     */
+    @Override
+    public long capacity(double fpp) {
+        return (long) (-(double) numBits / numHashes * Math.log1p(-Math.pow(fpp, 1.0 / numHashes)));
+    }
+
+    /**
+     * Bit index of the i-th probe for the given element hash.
+     */
+    protected long index(long h1, long h2, int i) {
+        return strategy.index(h1, h2, i, numBits);
+    }
+
+    /**
+     * Set the bit at the given index; called by add for every probe of the element.
+     */
+    protected void setBit(long index) {
+        orWord((int) (index >>> 6), 1L << index);
+    }
+
+    /**
+     * Read the 64-bit word of the bit vector at the given index.
+     */
+    protected long word(int index) {
+        return bits[index];
+    }
+
+    /**
+     * Set the bits of the given mask in the 64-bit word at the given index.
+     */
+    protected void orWord(int index, long mask) {
+        bits[index] |= mask;
+    }
+
+    /**
+     * Clear all bits of the 64-bit word at the given index that are not set in the mask.
+     */
+    protected void andWord(int index, long mask) {
+        bits[index] &= mask;
+    }
+
+    /**
+     * Number of bits in this filter.
+     */
+    public long getNumBits() {
+        return numBits;
+    }
+
+    /**
+     * Number of hash functions (probes per element) of this filter.
+     */
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    public HashStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Seed of the hash functions of this filter.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Funnel used to hash elements, or null if they are hashed by their hashCode.
+     */
+    public Funnel<? super E> getFunnel() {
+        return funnel;
+    }
 }
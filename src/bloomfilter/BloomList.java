@@ -1,87 +1,655 @@
 package bloomfilter;
 
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
 
-public class BloomList<E> extends LinkedList<E> {
-    private final BloomFilter<E> bf;
+/**
+ * A list that answers lookups with the help of a membership filter, so that most lookups of absent elements
+ * do not scan the list.
+ * <p>
+ * The elements are stored contiguously in a single array, so get and set take constant time and the scans behind
+ * lookups that pass the filter read memory sequentially. The array keeps free room at both ends: adding or
+ * removing at either end of the list takes amortized constant time (so the list can serve as a queue), and
+ * inserting or removing in between moves the shorter part of the list.
+ * <p>
+ * Optionally, once the list has {@link #INDEX_THRESHOLD} elements, the first lookup that passes the filter builds
+ * a hash index of the elements, which then resolves filter hits without a scan, at the cost of a HashMap entry
+ * per distinct element that every modification updates.
+ * All modifications (including those through iterators and sub lists) go through add(int, E), set, remove(int),
+ * removeRange, removeIf and clear, which keep the filter and the index up to date.
+ * <p>
+ * The lookup statistics can be monitored via JMX, see {@link BloomListMXBean}.
+ */
+public class BloomList<E> extends AbstractList<E> implements RandomAccess, BloomListMXBean {
+    /**
+     * Default threshold for the estimated false positive rate, above which the filter is rebuilt.
+     */
+    public static final double DEFAULT_MAX_FPP = 0.05;
+
+    /**
+     * Factor by which the filter grows, relative to the current size, when it is rebuilt into a larger one.
+     */
+    static final int GROWTH_FACTOR = 2;
+
+    /**
+     * Minimum number of unsuccessful lookups before the observed false positive rate is trusted.
+     */
+    static final int MIN_OBSERVED_LOOKUPS = 1000;
+
+    /**
+     * Size of the list from which lookups that pass the filter build and use the hash index, if enabled.
+     */
+    static final int INDEX_THRESHOLD = 1024;
+
+    private static final int DEFAULT_CAPACITY = 10;
+
+    /**
+     * The elements of the list are elements[head] to elements[head + size - 1]; all other slots are null.
+     */
+    private Object[] elements = new Object[0];
+    private int head;
+    private int size;
+
+    /**
+     * Number of occurrences of every element. Always kept if the filter supports removals, since such a filter
+     * holds every distinct element once; otherwise null unless hashIndex is set, the list reaches INDEX_THRESHOLD
+     * elements and a lookup passes the filter, and again after clear.
+     */
+    private Map<E, Integer> index;
+
+    /**
+     * Whether lookups in large lists build and use the hash index.
+     */
+    private final boolean hashIndex;
+
+    private final double maxFpp;
+
+    private MembershipFilter<E> bf;
+
+    /**
+     * Set if the list was modified since the filter was last built; only used for static filters,
+     * which are rebuilt before the next lookup.
+     */
+    private boolean stale;
+
+    /**
+     * Number of elements in the filter after which its expected false positive rate exceeds maxFpp.
+     */
+    private long filterCapacity;
+
+    // Statistics since the last rebuild of the filter:
+
+    /**
+     * Number of elements added to the filter.
+     */
+    private long insertions;
+
+    /**
+     * Number of elements removed from the filter.
+     */
+    private long deletions;
+
+    /**
+     * Number of lookups rejected by the filter.
+     */
+    private long filterRejects;
+
+    /**
+     * Number of lookups that passed the filter but were not contained in the list.
+     */
+    private long falsePositives;
+
+    // Statistics since the creation of the list:
+
+    private long totalRejects;
+    private long totalHits;
+    private long totalFalsePositives;
+    private long rebuilds;
+
+    /**
+     * Create a BloomList from a filter instance, e.g. a BloomFilter.
+     * <p>
+     * If the filter supports removals (like {@link CountingBloomFilter} or {@link CuckooFilter}), removed and
+     * replaced elements are removed from the filter as well. Otherwise they remain in the filter (causing false
+     * positives) until it is rebuilt. Static filters (like {@link XorFilter}) are rebuilt from the whole list on
+     * the first lookup after a modification, so they suit lists that are read much more often than modified.
+     * <p>
+     * Filters that support removals hold every distinct element once, no matter how often it occurs in the list.
+     * If such a filter becomes full (see {@link CuckooFilter}), it is replaced by a larger one.
+     */
+    public BloomList(MembershipFilter<E> bf) {
+        this(bf, DEFAULT_MAX_FPP);
+    }
+
+    /**
+     * Create a BloomList from a filter instance, that rebuilds its filter whenever the estimated
+     * false positive rate exceeds maxFpp. If the filter is too small for the current elements, it is replaced
+     * by a larger filter of the same kind.
+     */
+    public BloomList(MembershipFilter<E> bf, double maxFpp) {
+        this(bf, maxFpp, true);
+    }
 
     /**
-     * Create a BloomList from a BloomFilter instance.
+     * Create a BloomList from a filter instance, that rebuilds its filter whenever the estimated false positive
+     * rate exceeds maxFpp, and builds a hash index of large lists only if hashIndex is set. Without the index,
+     * lookups that pass the filter scan the list. Filters that support removals always count the occurrences of
+     * every element, which then also serve as the index.
      */
-    public BloomList(BloomFilter<E> bf) {
+    public BloomList(MembershipFilter<E> bf, double maxFpp, boolean hashIndex) {
+        if (!(maxFpp > 0.0 && maxFpp < 1.0)) {
+            throw new IllegalArgumentException("False positive rate must be in (0, 1): " + maxFpp);
+        }
+        this.maxFpp = maxFpp;
+        this.hashIndex = hashIndex;
+        setFilter(bf);
+        if (bf.supportsRemove()) {
+            index = new HashMap<>();
+        }
+    }
+
+    private void setFilter(MembershipFilter<E> bf) {
         this.bf = bf;
+        this.filterCapacity = bf.capacity(maxFpp);
     }
 
     /**
      * Reset the bloom filter to bring it to the optimal state
      * (i.e. the state reached when inserting all current element into the filter).
      * Can be called after (many) deletions to reduce the number of false positives.
+     * Bloom filters are rebuilt on all cores once the list has {@link BloomFilter#PARALLEL_THRESHOLD} elements.
      */
     public void resetBloomFilter() {
         // TODO
 
-        bf.reset();
-        for(E e : this) {
-            bf.add(e);
+        Collection<E> content = filterContent();
+        while (true) {
+            try {
+                bf.rebuild(content);
+                break;
+            } catch (IllegalStateException full) {
+                growFilter(full);
+            }
+        }
+        stale = false;
+        insertions = content.size();
+        deletions = 0;
+        filterRejects = 0;
+        falsePositives = 0;
+        rebuilds++;
+    }
+
+    /**
+     * The elements the filter is built from: the distinct elements if it supports removals, all elements otherwise.
+     */
+    private Collection<E> filterContent() {
+        return bf.supportsRemove() ? index.keySet() : this;
+    }
+
+    /**
+     * Replace a filter that is full by an empty one of the same kind with at least twice its capacity; the caller
+     * rebuilds it. Rethrows the exception if the filter cannot grow.
+     */
+    private void growFilter(IllegalStateException full) {
+        if (filterCapacity >= Long.MAX_VALUE / GROWTH_FACTOR) {
+            throw full;
+        }
+        long capacity = Math.max(filterContent().size(), filterCapacity) * GROWTH_FACTOR;
+        setFilter(bf.newInstance(capacity, maxFpp / 2));
+    }
+
+    /**
+     * Rebuild the filter if its estimated false positive rate is too high. If the current elements alone
+     * would use more than half of the tolerated false positive rate, a larger filter is allocated first.
+     */
+    private void checkFilter() {
+        if (!bf.supportsAdd() || filterElements() <= filterCapacity && observedFpp() <= maxFpp) {
+            return;
+        }
+        if (bf.expectedFpp(size()) > maxFpp / 2) {
+            setFilter(bf.newInstance((long) size() * GROWTH_FACTOR, maxFpp / 2));
         }
+        resetBloomFilter();
+    }
+
+    /**
+     * Estimated false positive rate of the filter. Based on the number of elements in the filter, or on the
+     * observed rate of false positives, if that is higher and enough lookups were made.
+     */
+    public double estimatedFpp() {
+        return Math.max(bf.expectedFpp(filterElements()), observedFpp());
     }
 
     @Override
-    public boolean add(E e) {
-        // TODO
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public long getFilterRejects() {
+        return totalRejects;
+    }
+
+    @Override
+    public long getConfirmedHits() {
+        return totalHits;
+    }
+
+    @Override
+    public long getFalsePositives() {
+        return totalFalsePositives;
+    }
+
+    @Override
+    public long getFilterRebuilds() {
+        return rebuilds;
+    }
+
+    @Override
+    public double getFilterFpp() {
+        return bf.currentFpp();
+    }
+
+    @Override
+    public double getEstimatedFpp() {
+        return estimatedFpp();
+    }
+
+    @Override
+    public double getMaxFpp() {
+        return maxFpp;
+    }
+
+    /**
+     * Number of elements in the filter, including removed ones unless the filter supports removals.
+     */
+    private long filterElements() {
+        return bf.supportsRemove() ? insertions - deletions : insertions;
+    }
+
+    /**
+     * Fraction of unsuccessful lookups that passed the filter; 0 until enough lookups were made.
+     */
+    private double observedFpp() {
+        long negatives = filterRejects + falsePositives;
+        if (negatives < MIN_OBSERVED_LOOKUPS) {
+            return 0.0;
+        }
+        return (double) falsePositives / negatives;
+    }
+
+    /**
+     * Add an element that is about to be added to the list to the filter and the index. A filter that is full
+     * is replaced by a larger one first, so the list never holds an element that is missing from the filter.
+     */
+    private void addToFilter(E e) {
+        if (!bf.supportsRemove() || !index.containsKey(e)) {
+            if (bf.supportsAdd()) {
+                while (true) {
+                    try {
+                        bf.add(e);
+                        break;
+                    } catch (IllegalStateException full) {
+                        growFilter(full);
+                        resetBloomFilter();
+                    }
+                }
+            } else {
+                stale = true;
+            }
+            insertions++;
+        }
+        if (index != null) {
+            index.merge(e, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Update the index and the filter after an element was removed from the list. A filter that supports
+     * removals drops the element with its last occurrence.
+     */
+    @SuppressWarnings("unchecked")
+    private void removeFromFilter(Object e) {
+        if (index != null) {
+            index.computeIfPresent((E) e, (k, count) -> count == 1 ? null : count - 1);
+        }
+        if (bf.supportsRemove()) {
+            if (!index.containsKey(e)) {
+                bf.remove((E) e);
+                deletions++;
+            }
+        } else if (!bf.supportsAdd()) {
+            stale = true;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int i) {
+        Objects.checkIndex(i, size);
+        return (E) elements[head + i];
+    }
+
+    /**
+     * Make room for n more elements at the front or the back of the array. If there is not enough, the elements
+     * are moved within the array, or into a new array one and a half times as large as needed if less than
+     * a quarter of the current one would remain free. The other end keeps its free room, up to half of the rest.
+     */
+    private void reserve(int n, boolean front) {
+        int back = elements.length - head - size;
+        if ((front ? head : back) >= n) {
+            return;
+        }
+        int newSize = size + n;
+        int capacity = elements.length;
+        if (newSize > capacity - (capacity >> 2)) {
+            capacity = Math.max(DEFAULT_CAPACITY, newSize + (newSize >> 1));
+        }
+        int spare = capacity - newSize;
+        int newHead = front ? capacity - size - Math.min(back, spare / 2) : Math.min(head, spare / 2);
+        if (capacity == elements.length) {
+            System.arraycopy(elements, head, elements, newHead, size);
+            if (newHead < head) {
+                Arrays.fill(elements, Math.max(newHead + size, head), head + size, null);
+            } else {
+                Arrays.fill(elements, head, Math.min(head + size, newHead), null);
+            }
+        } else {
+            Object[] grown = new Object[capacity];
+            System.arraycopy(elements, head, grown, newHead, size);
+            elements = grown;
+        }
+        head = newHead;
+    }
 
-        boolean added = super.add(e);
+    /**
+     * Open a gap for n elements before position i by moving the shorter part of the list; returns the index of
+     * the gap in the array.
+     */
+    private int openGap(int i, int n) {
+        if (i < size - i) {
+            reserve(n, true);
+            System.arraycopy(elements, head, elements, head - n, i);
+            head -= n;
+        } else {
+            reserve(n, false);
+            System.arraycopy(elements, head + i, elements, head + i + n, size - i);
+        }
+        size += n;
+        return head + i;
+    }
 
-        if(added){
-            bf.add(e);
+    /**
+     * Remove the positions fromIndex to toIndex - 1 by moving the shorter remaining part of the list.
+     */
+    private void closeGap(int fromIndex, int toIndex) {
+        int n = toIndex - fromIndex;
+        if (fromIndex < size - toIndex) {
+            System.arraycopy(elements, head, elements, head + n, fromIndex);
+            Arrays.fill(elements, head, head + n, null);
+            head += n;
+        } else {
+            System.arraycopy(elements, head + toIndex, elements, head + fromIndex, size - toIndex);
+            Arrays.fill(elements, head + size - n, head + size, null);
         }
-        return added;
+        size -= n;
     }
 
     @Override
-    public void add(int index, E element) {
+    public void add(int i, E element) {
         // TODO
-        super.add(index, element);
-        bf.add(element);
+        Objects.checkIndex(i, size + 1);
+        addToFilter(element);
+
+        int slot = openGap(i, 1);
+        elements[slot] = element;
+        modCount++;
+        checkFilter();
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public E set(int i, E e) {
         // TODO
-        E prev = super.set(i, e);
+        Objects.checkIndex(i, size);
+        addToFilter(e);
 
-        resetBloomFilter();
+        E prev = (E) elements[head + i];
+        elements[head + i] = e;
+        removeFromFilter(prev);
+        checkFilter();
         return prev;
     }
 
     @Override
-    public boolean addAll(int index, Collection<? extends E> c) {
+    public boolean addAll(Collection<? extends E> c) {
+        return addAll(size, c);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean addAll(int i, Collection<? extends E> c) {
         // TODO
+        Objects.checkIndex(i, size + 1);
+        Object[] added = c.toArray();
+        if (added.length == 0) {
+            return false;
+        }
+        for (Object e : added) {
+            addToFilter((E) e);
+        }
+
+        int slot = openGap(i, added.length);
+        System.arraycopy(added, 0, elements, slot, added.length);
+        modCount++;
+        checkFilter();
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(int i) {
+        Objects.checkIndex(i, size);
+        E prev = (E) elements[head + i];
+        closeGap(i, i + 1);
+        modCount++;
+
+        removeFromFilter(prev);
+        return prev;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int i = indexOf(o);
+        if (i < 0) {
+            return false;
+        }
+        remove(i);
+        return true;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, size);
+        for (int i = fromIndex; i < toIndex; i++) {
+            removeFromFilter(elements[head + i]);
+        }
+        closeGap(fromIndex, toIndex);
+        modCount++;
+    }
 
-        boolean added = super.addAll(index, c);
-        if(added){
-            for(E e : c){
-                bf.add(e);
+    /**
+     * Removes the matching elements in a single pass, like ArrayList. The predicate is applied to all elements
+     * before the list is modified, so a predicate that throws leaves the list unchanged.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        int expectedModCount = modCount;
+        int end = size;
+        BitSet removed = new BitSet(end);
+        for (int i = 0; i < end && modCount == expectedModCount; i++) {
+            if (filter.test((E) elements[head + i])) {
+                removed.set(i);
+            }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        if (removed.isEmpty()) {
+            return false;
+        }
+        int newSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (removed.get(i)) {
+                removeFromFilter(elements[head + i]);
+            } else {
+                elements[head + newSize++] = elements[head + i];
             }
         }
-        return added;
+        Arrays.fill(elements, head + newSize, head + size, null);
+        size = newSize;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(e -> !c.contains(e));
     }
 
     @Override
     public boolean contains(Object e) {
         // TODO - Done
 
-        if(!bf.containsMaybe((E) e)){
+        if (!passesFilter(e)) {
             return false;
         }
-        return super.contains(e);
+        return countLookup(index() != null ? index.containsKey(e) : scan(e) >= 0);
+    }
+
+    /**
+     * Whether a lookup of o passes the filter, which is rebuilt first if it is stale. Rejected lookups are counted.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean passesFilter(Object o) {
+        if (stale) {
+            resetBloomFilter();
+        }
+        if (!bf.containsMaybe((E) o)) {
+            filterRejects++;
+            totalRejects++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Count a lookup that passed the filter as a hit or as a false positive, and return hit.
+     */
+    private boolean countLookup(boolean hit) {
+        if (hit) {
+            totalHits++;
+            return true;
+        }
+        falsePositives++;
+        totalFalsePositives++;
+        checkFilter();
+        return false;
+    }
+
+    /**
+     * The hash index, built now if the list has become large enough; null if the list is too small or the index
+     * is disabled.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<E, Integer> index() {
+        if (index == null && hashIndex && size >= INDEX_THRESHOLD) {
+            index = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                index.merge((E) elements[head + i], 1, Integer::sum);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Elements that are not contained are mostly rejected by the filter; the others are looked up in the index,
+     * if there is one, and the list is scanned once for the hits.
+     */
+    @Override
+    public int indexOf(Object o) {
+        if (!passesFilter(o)) {
+            return -1;
+        }
+        int i = index != null && !index.containsKey(o) ? -1 : scan(o);
+        countLookup(i >= 0);
+        return i;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        if (!passesFilter(o)) {
+            return -1;
+        }
+        int i = index != null && !index.containsKey(o) ? -1 : scanBackward(o);
+        countLookup(i >= 0);
+        return i;
+    }
+
+    /**
+     * Index of the first occurrence of o, or -1.
+     */
+    private int scan(Object o) {
+        for (int i = 0; i < size; i++) {
+            if (Objects.equals(o, elements[head + i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Index of the last occurrence of o, or -1.
+     */
+    private int scanBackward(Object o) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (Objects.equals(o, elements[head + i])) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     @Override
     public void clear() {
         // TODO - Done
-        super.clear();
-        bf.reset();
+        modCount++;
+        Arrays.fill(elements, head, head + size, null);
+        head = 0;
+        size = 0;
+        index = bf.supportsRemove() ? new HashMap<>() : null;
+        resetBloomFilter();
     }
 }
@@ -0,0 +1,50 @@
+package bloomfilter;
+
+/**
+ * Management interface of a {@link BloomList}, to monitor its filter via JMX; register a list with
+ * {@code ManagementFactory.getPlatformMBeanServer().registerMBean(list, name)}.
+ * <p>
+ * The counters cover all lookups since the list was created. They are read without synchronization,
+ * so a reader on another thread may see slightly outdated values.
+ */
+public interface BloomListMXBean {
+    /**
+     * Number of elements in the list.
+     */
+    int getSize();
+
+    /**
+     * Number of lookups that were rejected by the filter, without looking at the list.
+     */
+    long getFilterRejects();
+
+    /**
+     * Number of lookups that passed the filter and found the element in the list.
+     */
+    long getConfirmedHits();
+
+    /**
+     * Number of lookups that passed the filter, but did not find the element in the list.
+     */
+    long getFalsePositives();
+
+    /**
+     * Number of times the filter was rebuilt, either explicitly or because its false positive rate was too high.
+     */
+    long getFilterRebuilds();
+
+    /**
+     * False positive rate of the filter in its current state, see {@link MembershipFilter#currentFpp()}.
+     */
+    double getFilterFpp();
+
+    /**
+     * Estimated false positive rate, see {@link BloomList#estimatedFpp()}.
+     */
+    double getEstimatedFpp();
+
+    /**
+     * Threshold of the estimated false positive rate above which the filter is rebuilt.
+     */
+    double getMaxFpp();
+}
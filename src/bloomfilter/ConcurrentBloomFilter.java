@@ -0,0 +1,93 @@
+package bloomfilter;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A bloom filter that can be shared by many threads without external locking.
+ * <p>
+ * Bits are set with an atomic OR on the 64-bit words of the bit vector, so concurrent adds never lose bits:
+ * add is lock-free and containsMaybe is wait-free. Every add that completed before a call to containsMaybe,
+ * close or snapshot is visible to that call; adds that run concurrently with it may or may not be.
+ * Adds that run concurrently with reset may survive the reset.
+ */
+public class ConcurrentBloomFilter<E> extends BloomFilter<E> {
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    public ConcurrentBloomFilter(DataInput input) throws IOException {
+        super(input);
+    }
+
+    public ConcurrentBloomFilter(DataInput input, Funnel<? super E> funnel) throws IOException {
+        super(input, funnel);
+    }
+
+    public ConcurrentBloomFilter(long numBits, int numHashes, HashStrategy strategy) {
+        super(numBits, numHashes, strategy);
+    }
+
+    public ConcurrentBloomFilter(long numBits, int numHashes, HashStrategy strategy, long seed,
+                                 Funnel<? super E> funnel) {
+        super(numBits, numHashes, strategy, seed, funnel);
+    }
+
+    /**
+     * See {@link BloomFilter#create(long, double)}.
+     */
+    public static <E> ConcurrentBloomFilter<E> create(long expectedInsertions, double fpp) {
+        return sized(expectedInsertions, fpp,
+                (numBits, numHashes) -> new ConcurrentBloomFilter<>(numBits, numHashes, HashStrategy.DOUBLE_HASHING));
+    }
+
+    /**
+     * See {@link BloomFilter#create(Funnel, long, double)}.
+     */
+    public static <E> ConcurrentBloomFilter<E> create(Funnel<? super E> funnel, long expectedInsertions, double fpp) {
+        return sized(expectedInsertions, fpp, (numBits, numHashes) ->
+                new ConcurrentBloomFilter<>(numBits, numHashes, HashStrategy.DOUBLE_HASHING, 0L, funnel));
+    }
+
+    @Override
+    protected BloomFilter<E> newFilter(long numBits, int numHashes) {
+        return new ConcurrentBloomFilter<>(numBits, numHashes, getStrategy(), getSeed(), getFunnel());
+    }
+
+    @Override
+    protected long word(int index) {
+        return (long) WORDS.getAcquire(bits, index);
+    }
+
+    @Override
+    protected void orWord(int index, long mask) {
+        // Skip the atomic read-modify-write (and the cache line invalidation) if all bits are already set
+        if ((word(index) & mask) != mask) {
+            WORDS.getAndBitwiseOrRelease(bits, index, mask);
+        }
+    }
+
+    @Override
+    protected void andWord(int index, long mask) {
+        WORDS.getAndBitwiseAndRelease(bits, index, mask);
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < bits.length; i++) {
+            WORDS.setRelease(bits, i, 0L);
+        }
+    }
+
+    /**
+     * Copy the current state into a plain (single-threaded) bloom filter. The copy contains every element
+     * whose add completed before this call.
+     */
+    public BloomFilter<E> snapshot() {
+        BloomFilter<E> copy = new BloomFilter<>(getNumBits(), getNumHashes(), getStrategy(), getSeed(), getFunnel());
+        for (int i = 0; i < bits.length; i++) {
+            copy.bits[i] = word(i);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,194 @@
+package bloomfilter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A bloom filter that keeps a 4-bit counter next to every bit, so that elements can be removed again.
+ * <p>
+ * Counters are packed 16 to a long and saturate at 15; a saturated counter is never decremented, since the
+ * number of elements mapped to it is no longer known. A bit is set exactly when its counter is non-zero,
+ * so lookups only read the bit vector and cost the same as in a plain {@link BloomFilter}.
+ * Removing an element that was never added can cause false negatives.
+ */
+public class CountingBloomFilter<E> extends BloomFilter<E> {
+    private static final int COUNTER_BITS = 4;
+    private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+    private static final long MAX_COUNT = (1L << COUNTER_BITS) - 1;
+
+    private final long[] counters;
+
+    /**
+     * Read a counting filter that was serialized with {@link #close(DataOutput)}.
+     */
+    public CountingBloomFilter(DataInput input) throws IOException {
+        this(input, null);
+    }
+
+    /**
+     * Read a counting filter that was created with the given funnel (or without one, if it is null).
+     */
+    public CountingBloomFilter(DataInput input, Funnel<? super E> funnel) throws IOException {
+        super(input, funnel);
+        this.counters = new long[numCounterWords(getNumBits())];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = input.readLong();
+        }
+    }
+
+    public CountingBloomFilter(long numBits, int numHashes, HashStrategy strategy) {
+        this(numBits, numHashes, strategy, 0L, null);
+    }
+
+    public CountingBloomFilter(long numBits, int numHashes, HashStrategy strategy, long seed,
+                               Funnel<? super E> funnel) {
+        super(numBits, numHashes, strategy, seed, funnel);
+        this.counters = new long[numCounterWords(numBits)];
+    }
+
+    /**
+     * See {@link BloomFilter#create(long, double)}.
+     */
+    public static <E> CountingBloomFilter<E> create(long expectedInsertions, double fpp) {
+        return sized(expectedInsertions, fpp,
+                (numBits, numHashes) -> new CountingBloomFilter<>(numBits, numHashes, HashStrategy.DOUBLE_HASHING));
+    }
+
+    /**
+     * See {@link BloomFilter#create(Funnel, long, double)}.
+     */
+    public static <E> CountingBloomFilter<E> create(Funnel<? super E> funnel, long expectedInsertions, double fpp) {
+        return sized(expectedInsertions, fpp, (numBits, numHashes) ->
+                new CountingBloomFilter<>(numBits, numHashes, HashStrategy.DOUBLE_HASHING, 0L, funnel));
+    }
+
+    @Override
+    protected BloomFilter<E> newFilter(long numBits, int numHashes) {
+        return new CountingBloomFilter<>(numBits, numHashes, getStrategy(), getSeed(), getFunnel());
+    }
+
+    private static int numCounterWords(long numBits) {
+        return Math.toIntExact((numBits + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD);
+    }
+
+    /**
+     * Serialize this filter: the plain bloom filter format, followed by the packed counters.
+     * A filter written this way can also be read as a plain {@link BloomFilter}.
+     */
+    @Override
+    public void close(DataOutput output) throws IOException {
+        super.close(output);
+        for (long word : counters) {
+            output.writeLong(word);
+        }
+    }
+
+    @Override
+    protected void setBit(long index) {
+        int word = (int) (index / COUNTERS_PER_WORD);
+        int shift = (int) (index % COUNTERS_PER_WORD) * COUNTER_BITS;
+        if (((counters[word] >>> shift) & MAX_COUNT) != MAX_COUNT) {
+            counters[word] += 1L << shift;
+        }
+        super.setBit(index);
+    }
+
+    @Override
+    public boolean supportsRemove() {
+        return true;
+    }
+
+    /**
+     * Remove an element from this filter. Returns false (and leaves the filter unchanged),
+     * if the element was definitely not contained.
+     */
+    @Override
+    public boolean remove(E element) {
+        Funnel<? super E> funnel = getFunnel();
+        if (funnel == null) {
+            long h1 = getStrategy().hashCodeH1(element.hashCode(), getSeed());
+            return removeHash(h1, getStrategy().hashCodeH2(h1));
+        }
+        Murmur3Hasher hasher = Murmur3Hasher.hash(funnel, element, getSeed());
+        return removeHash(hasher.h1(), hasher.h2());
+    }
+
+    private boolean removeHash(long h1, long h2) {
+        if (!containsHash(h1, h2)) {
+            return false;
+        }
+
+        for (int i = 0; i < getNumHashes(); i++) {
+            long index = index(h1, h2, i);
+            int word = (int) (index / COUNTERS_PER_WORD);
+            int shift = (int) (index % COUNTERS_PER_WORD) * COUNTER_BITS;
+            long count = (counters[word] >>> shift) & MAX_COUNT;
+            if (count == MAX_COUNT || count == 0) {
+                continue;
+            }
+            counters[word] -= 1L << shift;
+            if (count == 1) {
+                bits[(int) (index >>> 6)] &= ~(1L << index);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add all elements of the other counting filter to this one, by adding up the counters (saturating at 15).
+     *
+     * @throws IllegalArgumentException if the other filter is not a counting filter or has different parameters
+     */
+    @Override
+    public void union(BloomFilter<? extends E> other) {
+        CountingBloomFilter<?> counting = checkCounting(other);
+        super.union(other);
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = mergeCounters(counters[i], counting.counters[i], false);
+        }
+    }
+
+    /**
+     * Keep only the elements that are also contained in the other counting filter, by taking the minimum
+     * of the counters. Elements that were added to both filters can still be removed from the result.
+     *
+     * @throws IllegalArgumentException if the other filter is not a counting filter or has different parameters
+     */
+    @Override
+    public void intersect(BloomFilter<? extends E> other) {
+        CountingBloomFilter<?> counting = checkCounting(other);
+        super.intersect(other);
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = mergeCounters(counters[i], counting.counters[i], true);
+        }
+    }
+
+    private static CountingBloomFilter<?> checkCounting(BloomFilter<?> other) {
+        if (!(other instanceof CountingBloomFilter)) {
+            throw new IllegalArgumentException("Counting filters can only be merged with counting filters");
+        }
+        return (CountingBloomFilter<?>) other;
+    }
+
+    /**
+     * Merge two words of packed counters: the saturated sum of each pair of counters, or their minimum.
+     * A bit is set exactly when its merged counter is non-zero, as for the OR (AND) of the bit vectors.
+     */
+    private static long mergeCounters(long a, long b, boolean min) {
+        long merged = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += COUNTER_BITS) {
+            long ca = (a >>> shift) & MAX_COUNT;
+            long cb = (b >>> shift) & MAX_COUNT;
+            merged |= (min ? Math.min(ca, cb) : Math.min(ca + cb, MAX_COUNT)) << shift;
+        }
+        return merged;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        Arrays.fill(counters, 0L);
+    }
+}
@@ -0,0 +1,336 @@
+package bloomfilter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A cuckoo filter (Fan et al., 2014) with buckets of 4 slots and 16-bit fingerprints, packed into one long per
+ * bucket. Each element has two candidate buckets; its fingerprint is stored in one of them, relocating other
+ * fingerprints if both are full. Unlike a plain bloom filter, elements can be removed again.
+ * <p>
+ * The false positive rate is at most 2 * 4 / 2^16 (about 0.012%) at full load. Adding fails with an
+ * {@link IllegalStateException} once the table is full, which also happens if one element is added more than
+ * 8 times. Removing an element that was never added can cause false negatives.
+ */
+public class CuckooFilter<E> implements MembershipFilter<E> {
+    static final int MAGIC = 0x434b4f4f;
+
+    static final int SLOTS_PER_BUCKET = 4;
+    static final int FINGERPRINT_BITS = 16;
+    private static final long FINGERPRINT_MASK = (1L << FINGERPRINT_BITS) - 1;
+
+    /**
+     * Highest load at which insertions still succeed with high probability; with 4 slots per bucket, they start
+     * failing at a load of about 0.93 to 0.96 (and earlier in tables of only a few buckets).
+     */
+    static final double MAX_LOAD = 0.9;
+
+    /**
+     * Number of relocations before an insertion gives up.
+     */
+    static final int MAX_KICKS = 500;
+
+    /**
+     * Marks an empty victim slot.
+     */
+    private static final long NO_VICTIM = -1L;
+
+    private final long[] buckets;
+    private final int bucketMask;
+    private final long seed;
+    private final Funnel<? super E> funnel;
+
+    /**
+     * A fingerprint that could not be placed, stored as (bucket << 16 | fingerprint); NO_VICTIM if there is none.
+     */
+    private long victim = NO_VICTIM;
+
+    /**
+     * Number of stored fingerprints.
+     */
+    private long size;
+
+    /**
+     * State of the generator that picks the slot to relocate.
+     */
+    private long kickState;
+
+    /**
+     * Create an empty filter with the given number of buckets (rounded up to a power of two).
+     * Elements are hashed with the funnel, or by their hashCode if it is null.
+     */
+    public CuckooFilter(int numBuckets, long seed, Funnel<? super E> funnel) {
+        if (numBuckets <= 0 || numBuckets > 1 << 30) {
+            throw new IllegalArgumentException("Invalid number of buckets: " + numBuckets);
+        }
+
+        int n = Integer.highestOneBit(numBuckets);
+        if (n < numBuckets) {
+            n <<= 1;
+        }
+        this.buckets = new long[n];
+        this.bucketMask = n - 1;
+        this.seed = seed;
+        this.funnel = funnel;
+        this.kickState = seed;
+    }
+
+    /**
+     * Read a filter that was serialized with {@link #close(DataOutput)}, and was created with the given funnel
+     * (or without one, if it is null).
+     */
+    public CuckooFilter(DataInput input, Funnel<? super E> funnel) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a cuckoo filter");
+        }
+        int numBuckets = input.readInt();
+        if (numBuckets <= 0 || Integer.bitCount(numBuckets) != 1) {
+            throw new IOException("Corrupt cuckoo filter header: " + numBuckets + " buckets");
+        }
+        if (input.readBoolean() != (funnel != null)) {
+            throw new IllegalArgumentException("Funnel does not match the serialized filter");
+        }
+
+        this.buckets = new long[numBuckets];
+        this.bucketMask = numBuckets - 1;
+        this.seed = input.readLong();
+        this.funnel = funnel;
+        this.kickState = seed;
+        this.size = input.readLong();
+        this.victim = input.readLong();
+        for (int i = 0; i < numBuckets; i++) {
+            buckets[i] = input.readLong();
+        }
+    }
+
+    /**
+     * Create a filter with enough buckets for the expected number of insertions. The false positive rate is
+     * fixed by the fingerprint size; fpp is only checked to be achievable.
+     */
+    public static <E> CuckooFilter<E> create(Funnel<? super E> funnel, long expectedInsertions, double fpp) {
+        return new CuckooFilter<>(numBuckets(expectedInsertions, fpp), 0L, funnel);
+    }
+
+    /**
+     * Number of buckets needed to hold the expected number of insertions at the maximum load.
+     */
+    private static int numBuckets(long expectedInsertions, double fpp) {
+        long n = BloomFilter.checkedInsertions(expectedInsertions, fpp);
+        long slots = (long) Math.ceil(n / MAX_LOAD);
+        long numBuckets = (slots + SLOTS_PER_BUCKET - 1) / SLOTS_PER_BUCKET;
+        if (numBuckets > 1 << 30) {
+            throw new IllegalArgumentException("Too many expected insertions: " + expectedInsertions);
+        }
+        return (int) numBuckets;
+    }
+
+    public static <E> CuckooFilter<E> create(long expectedInsertions, double fpp) {
+        return create(null, expectedInsertions, fpp);
+    }
+
+    @Override
+    public void close(DataOutput output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(buckets.length);
+        output.writeBoolean(funnel != null);
+        output.writeLong(seed);
+        output.writeLong(size);
+        output.writeLong(victim);
+        for (long bucket : buckets) {
+            output.writeLong(bucket);
+        }
+    }
+
+    @Override
+    public void add(E element) {
+        long hash = HashStrategy.hash64(element, funnel, seed);
+        long fp = fingerprint(hash);
+        int i1 = (int) hash & bucketMask;
+        if (insert(i1, fp) || insert(altIndex(i1, fp), fp)) {
+            size++;
+            return;
+        }
+        if (victim != NO_VICTIM) {
+            throw new IllegalStateException("Cuckoo filter is full");
+        }
+
+        // Relocate fingerprints along a random path, until one of them finds a free slot
+        int i = (kickState & 1) == 0 ? i1 : altIndex(i1, fp);
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            kickState = HashStrategy.mix64(kickState + HashStrategy.GOLDEN_GAMMA);
+            int slot = (int) (kickState >>> 62);
+            long evicted = slot(i, slot);
+            buckets[i] = withSlot(buckets[i], slot, fp);
+            fp = evicted;
+            i = altIndex(i, fp);
+            if (insert(i, fp)) {
+                size++;
+                return;
+            }
+        }
+        // Keep the last evicted fingerprint, so that no element is lost; the next add will fail
+        victim = (long) i << FINGERPRINT_BITS | fp;
+        size++;
+    }
+
+    @Override
+    public boolean containsMaybe(E element) {
+        long hash = HashStrategy.hash64(element, funnel, seed);
+        long fp = fingerprint(hash);
+        int i1 = (int) hash & bucketMask;
+        int i2 = altIndex(i1, fp);
+        return hasFingerprint(buckets[i1], fp) || hasFingerprint(buckets[i2], fp) || isVictim(i1, i2, fp);
+    }
+
+    @Override
+    public boolean supportsRemove() {
+        return true;
+    }
+
+    @Override
+    public boolean remove(E element) {
+        long hash = HashStrategy.hash64(element, funnel, seed);
+        long fp = fingerprint(hash);
+        int i1 = (int) hash & bucketMask;
+        int i2 = altIndex(i1, fp);
+        if (isVictim(i1, i2, fp)) {
+            victim = NO_VICTIM;
+        } else if (delete(i1, fp) || delete(i2, fp)) {
+            reinsertVictim();
+        } else {
+            return false;
+        }
+        size--;
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(buckets, 0L);
+        victim = NO_VICTIM;
+        size = 0;
+    }
+
+    /**
+     * Probability that a lookup of an absent element matches one of the 2 * 4 fingerprints it is compared with,
+     * scaled by the load; 1 if the filter would be over its maximum load.
+     */
+    @Override
+    public double expectedFpp(long insertions) {
+        double load = (double) insertions / numSlots();
+        if (load > MAX_LOAD) {
+            return 1.0;
+        }
+        return -Math.expm1(2 * SLOTS_PER_BUCKET * load * Math.log1p(-1.0 / FINGERPRINT_MASK));
+    }
+
+    @Override
+    public double currentFpp() {
+        return expectedFpp(size);
+    }
+
+    @Override
+    public long capacity(double fpp) {
+        double load = Math.log1p(-fpp) / (2 * SLOTS_PER_BUCKET * Math.log1p(-1.0 / FINGERPRINT_MASK));
+        return (long) (Math.min(load, MAX_LOAD) * numSlots());
+    }
+
+    @Override
+    public CuckooFilter<E> newInstance(long expectedInsertions, double fpp) {
+        return new CuckooFilter<>(numBuckets(expectedInsertions, fpp), seed, funnel);
+    }
+
+    /**
+     * Number of fingerprints stored in this filter.
+     */
+    public long size() {
+        return size;
+    }
+
+    private long numSlots() {
+        return (long) buckets.length * SLOTS_PER_BUCKET;
+    }
+
+    /**
+     * Fingerprint of a hash, taken from its upper bits; 0 marks an empty slot and is never used.
+     */
+    private static long fingerprint(long hash) {
+        long fp = hash >>> (Long.SIZE - FINGERPRINT_BITS);
+        return fp == 0 ? 1 : fp;
+    }
+
+    /**
+     * The other bucket of a fingerprint (partial-key cuckoo hashing); altIndex(altIndex(i, fp), fp) == i.
+     */
+    private int altIndex(int i, long fp) {
+        return (i ^ (int) HashStrategy.mix64(fp)) & bucketMask;
+    }
+
+    private long slot(int bucket, int slot) {
+        return (buckets[bucket] >>> (slot * FINGERPRINT_BITS)) & FINGERPRINT_MASK;
+    }
+
+    private static long withSlot(long bucket, int slot, long fp) {
+        int shift = slot * FINGERPRINT_BITS;
+        return (bucket & ~(FINGERPRINT_MASK << shift)) | (fp << shift);
+    }
+
+    /**
+     * Store the fingerprint in a free slot of the bucket; returns false if the bucket is full.
+     */
+    private boolean insert(int bucket, long fp) {
+        for (int slot = 0; slot < SLOTS_PER_BUCKET; slot++) {
+            if (slot(bucket, slot) == 0) {
+                buckets[bucket] = withSlot(buckets[bucket], slot, fp);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove one copy of the fingerprint from the bucket; returns false if it is not stored there.
+     */
+    private boolean delete(int bucket, long fp) {
+        for (int slot = 0; slot < SLOTS_PER_BUCKET; slot++) {
+            if (slot(bucket, slot) == fp) {
+                buckets[bucket] = withSlot(buckets[bucket], slot, 0L);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasFingerprint(long bucket, long fp) {
+        for (int slot = 0; slot < SLOTS_PER_BUCKET; slot++) {
+            if (((bucket >>> (slot * FINGERPRINT_BITS)) & FINGERPRINT_MASK) == fp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move the victim back into the table, if one of its buckets has a free slot again.
+     */
+    private void reinsertVictim() {
+        if (victim == NO_VICTIM) {
+            return;
+        }
+        int bucket = (int) (victim >>> FINGERPRINT_BITS);
+        long fp = victim & FINGERPRINT_MASK;
+        if (insert(bucket, fp) || insert(altIndex(bucket, fp), fp)) {
+            victim = NO_VICTIM;
+        }
+    }
+
+    private boolean isVictim(int i1, int i2, long fp) {
+        if (victim == NO_VICTIM || (victim & FINGERPRINT_MASK) != fp) {
+            return false;
+        }
+        int bucket = (int) (victim >>> FINGERPRINT_BITS);
+        return bucket == i1 || bucket == i2;
+    }
+}
@@ -0,0 +1,11 @@
+package bloomfilter;
+
+/**
+ * Decomposes an element into primitive values, which a {@link BloomFilter} feeds into a 128-bit hash function
+ * instead of relying on {@link Object#hashCode()}. Equal elements must produce the same sequence of values.
+ * See {@link Funnels} for funnels of common types.
+ */
+@FunctionalInterface
+public interface Funnel<T> {
+    void funnel(T from, PrimitiveSink into);
+}
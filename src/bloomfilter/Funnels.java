@@ -0,0 +1,17 @@
+package bloomfilter;
+
+/**
+ * Funnels for common element types.
+ */
+public final class Funnels {
+    public static final Funnel<Integer> INTEGER = (from, into) -> into.putInt(from);
+
+    public static final Funnel<Long> LONG = (from, into) -> into.putLong(from);
+
+    public static final Funnel<CharSequence> STRING = (from, into) -> into.putChars(from);
+
+    public static final Funnel<byte[]> BYTE_ARRAY = (from, into) -> into.putBytes(from);
+
+    private Funnels() {
+    }
+}
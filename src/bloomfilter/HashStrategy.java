@@ -0,0 +1,223 @@
+package bloomfilter;
+
+/**
+ * Maps the hash of an element to the bit indexes probed by a {@link BloomFilter}.
+ * <p>
+ * The hash of an element is a 128-bit value (h1, h2), computed once per element: with a {@link Funnel}, both
+ * halves come from MurmurHash3; otherwise they are derived from the {@link Object#hashCode()} of the element
+ * and the seed of the filter, see {@link #hashCodeH1(int, long)}.
+ * <p>
+ * The ordinal of a strategy is part of the serialized filter header, so new strategies must only be appended.
+ */
+public enum HashStrategy {
+    /**
+     * The original hash family: the i-th index is {@code (i * H_MUL * hash) mod numBits}.
+     * Kept so that filters created with the raw byte-count constructor behave as before; ignores the seed.
+     */
+    MULTIPLY_MOD {
+        @Override
+        long index(long h1, long h2, int i, long numBits) {
+            return multiplyMod(h1, i, numBits);
+        }
+
+        @Override
+        void indexes(long[] h1, long[] h2, int i, long numBits, long[] out, int n) {
+            for (int j = 0; j < n; j++) {
+                out[j] = multiplyMod(h1[j], i, numBits);
+            }
+        }
+
+        @Override
+        long hashCodeH1(int hash, long seed) {
+            return hash;
+        }
+
+        @Override
+        long hashCodeH2(long h1) {
+            return 0L;
+        }
+    },
+
+    /**
+     * Double hashing (Kirsch/Mitzenmacher) over two 64-bit hashes: the i-th index is
+     * {@code (h1 + i * h2) mod numBits}, so the probes cover filters of any size evenly.
+     */
+    DOUBLE_HASHING {
+        @Override
+        long index(long h1, long h2, int i, long numBits) {
+            return doubleHashing(h1, h2, i, numBits);
+        }
+
+        @Override
+        void indexes(long[] h1, long[] h2, int i, long numBits, long[] out, int n) {
+            for (int j = 0; j < n; j++) {
+                out[j] = doubleHashing(h1[j], h2[j], i, numBits);
+            }
+        }
+    },
+
+    /**
+     * Cache-line blocked hashing: h1 selects one block of {@link #BLOCK_BITS} bits and all probes, derived
+     * from h2, set bits inside that block, so a lookup touches a single cache line.
+     */
+    BLOCKED {
+        @Override
+        long index(long h1, long h2, int i, long numBits) {
+            return blocked(h1, h2, i, numBits, false);
+        }
+
+        @Override
+        void indexes(long[] h1, long[] h2, int i, long numBits, long[] out, int n) {
+            for (int j = 0; j < n; j++) {
+                out[j] = blocked(h1[j], h2[j], i, numBits, false);
+            }
+        }
+
+        @Override
+        boolean isValidNumBits(long numBits) {
+            return numBits % BLOCK_BITS == 0;
+        }
+    },
+
+    /**
+     * Like {@link #BLOCKED}, but the i-th probe always sets a bit in word (i mod 8) of the block: the layout of
+     * split block bloom filters, which SIMD code probes one word per lane. Lookups here test one bit per probe as
+     * for BLOCKED, so they are not faster (testing one combined mask per word was not either), while the false
+     * positive rate is higher: about 2.2% instead of 1.2% for a filter sized for 1%. Only meant for comparing
+     * the two layouts; use BLOCKED otherwise.
+     */
+    BLOCKED_SPLIT {
+        @Override
+        long index(long h1, long h2, int i, long numBits) {
+            return blocked(h1, h2, i, numBits, true);
+        }
+
+        @Override
+        void indexes(long[] h1, long[] h2, int i, long numBits, long[] out, int n) {
+            for (int j = 0; j < n; j++) {
+                out[j] = blocked(h1[j], h2[j], i, numBits, true);
+            }
+        }
+
+        @Override
+        boolean isValidNumBits(long numBits) {
+            return numBits % BLOCK_BITS == 0;
+        }
+    };
+
+    /**
+     * Number of bits in one block of the blocked strategies (one 64-byte cache line).
+     */
+    static final int BLOCK_BITS = 512;
+
+    /**
+     * Increment of the SplitMix64 generator, added before mixing so that a hash code of 0 does not map to 0.
+     */
+    static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Returns the index of the i-th probe for the given element hash, in the range [0, numBits).
+     */
+    abstract long index(long h1, long h2, int i, long numBits);
+
+    /**
+     * Compute the index of the i-th probe for the first n element hashes. Every strategy implements this with its
+     * own loop over a static index function, so the strategy is dispatched once per batch and not per element.
+     */
+    abstract void indexes(long[] h1, long[] h2, int i, long numBits, long[] out, int n);
+
+    /**
+     * First half of the hash of an element without a funnel: its hash code, mixed with the seed into 64 bits.
+     */
+    long hashCodeH1(int hash, long seed) {
+        return mixed(hash, seed);
+    }
+
+    /**
+     * Second half of the hash of an element without a funnel, derived from the first half.
+     */
+    long hashCodeH2(long h1) {
+        return mix64(h1 + GOLDEN_GAMMA);
+    }
+
+    static long multiplyMod(long h1, int i, long numBits) {
+        int hash = (int) h1;
+        long index = (i * BloomFilter.H_MUL * hash) % numBits;
+        return index < 0 ? index + numBits : index;
+    }
+
+    static long doubleHashing(long h1, long h2, int i, long numBits) {
+        return ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+    }
+
+    /**
+     * Check whether a filter of the given size can use this strategy.
+     */
+    boolean isValidNumBits(long numBits) {
+        return true;
+    }
+
+    static long blocked(long h1, long h2, int i, long numBits, boolean split) {
+        return blockOf(h1, numBits / BLOCK_BITS) * BLOCK_BITS + blockOffset(h2, i, split);
+    }
+
+    /**
+     * Select the block of a blocked strategy from the upper 32 bits of the first half of the element hash.
+     */
+    static long blockOf(long hash, long numBlocks) {
+        return ((hash >>> 32) * numBlocks) >>> 32;
+    }
+
+    /**
+     * Odd multipliers that derive the in-block probes from the lower 32 bits of the second half of the element hash.
+     */
+    private static final int[] BLOCK_SALT = {
+            0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d, 0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31
+    };
+
+    /**
+     * Bit offset of the i-th probe inside the block, taken from the top bits of (lower hash * salt).
+     */
+    static int blockOffset(long hash, int i, boolean split) {
+        int product = (int) hash * (BLOCK_SALT[i & 7] + ((i >>> 3) << 1));
+        if (split) {
+            return (i & 7) * Long.SIZE + (product >>> 26);
+        }
+        return product >>> 23;
+    }
+
+    /**
+     * Mix the hash code of an element with the seed of the filter into 64 well-distributed bits.
+     */
+    static long mixed(int hash, long seed) {
+        return mix64((hash ^ seed) + GOLDEN_GAMMA);
+    }
+
+    /**
+     * 64-bit hash of an element, for filters that need a single well-distributed hash value: the mixed hashCode
+     * if funnel is null, the first half of its MurmurHash3 otherwise.
+     */
+    static <T> long hash64(T element, Funnel<? super T> funnel, long seed) {
+        if (funnel == null) {
+            return mixed(element.hashCode(), seed);
+        }
+        return Murmur3Hasher.hash(funnel, element, seed).h1();
+    }
+
+    /**
+     * Finalization step of the SplitMix64 generator; spreads the bits of the hash code over all 64 bits.
+     */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    static HashStrategy fromOrdinal(int ordinal) {
+        HashStrategy[] values = values();
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new IllegalArgumentException("Unknown hash strategy: " + ordinal);
+        }
+        return values[ordinal];
+    }
+}
@@ -12,7 +12,7 @@ public class Main {
 
         Random rng = new Random();
 
-        BloomFilter<Integer> filter = new BloomFilter<>(64);
+        BloomFilter<Integer> filter = BloomFilter.create(numInserts, 0.01);
 
         BloomList<Integer> bloomList = new BloomList<>(filter);
         List<Integer> list = new LinkedList<>();
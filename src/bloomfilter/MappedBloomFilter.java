@@ -0,0 +1,66 @@
+package bloomfilter;
+
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * A bloom filter whose bit vector lives in a memory-mapped file instead of the heap; see
+ * {@link BloomFilter#map(java.nio.file.Path, boolean)}.
+ * <p>
+ * Opening a filter only maps the file, and the pages are loaded on demand from the page cache, so several
+ * processes mapping the same file share one copy of it. A read-only mapping throws a
+ * {@link java.nio.ReadOnlyBufferException} on add and reset. Writes through a writable mapping are not atomic,
+ * so a file must not be written by more than one thread or process at a time.
+ */
+public class MappedBloomFilter<E> extends BloomFilter<E> {
+    private final MappedByteBuffer buffer;
+    private final LongBuffer words;
+
+    MappedBloomFilter(Header header, MappedByteBuffer buffer, Funnel<? super E> funnel) {
+        super(header, false, funnel);
+        this.buffer = buffer;
+        // Big-endian, like the words written by DataOutput.writeLong
+        this.words = buffer.asLongBuffer();
+    }
+
+    @Override
+    protected long word(int index) {
+        return words.get(index);
+    }
+
+    @Override
+    protected void orWord(int index, long mask) {
+        long word = words.get(index);
+        if ((word & mask) != mask) {
+            words.put(index, word | mask);
+        }
+    }
+
+    @Override
+    protected void andWord(int index, long mask) {
+        long word = words.get(index);
+        if ((word & mask) != word) {
+            words.put(index, word & mask);
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < words.capacity(); i++) {
+            words.put(i, 0L);
+        }
+    }
+
+    public boolean isReadOnly() {
+        return words.isReadOnly();
+    }
+
+    /**
+     * Write changes of a writable mapping back to the file.
+     */
+    public void force() {
+        if (!buffer.isReadOnly()) {
+            buffer.force();
+        }
+    }
+}
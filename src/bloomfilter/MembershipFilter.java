@@ -0,0 +1,94 @@
+package bloomfilter;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * An approximate membership filter: containsMaybe never returns false for an element that was added,
+ * but may return true for elements that were not added.
+ * <p>
+ * Implementations differ in whether they support removals ({@link CountingBloomFilter}, {@link CuckooFilter})
+ * and whether they support adding single elements at all: static filters like {@link XorFilter} can only be
+ * built from a complete set of elements with {@link #rebuild(Collection)}.
+ */
+public interface MembershipFilter<E> {
+    /**
+     * Add an element to this filter.
+     *
+     * @throws IllegalStateException if the filter is full; only filters that support removals may become full
+     */
+    void add(E element);
+
+    /**
+     * Returns false, if the element was definitely not added to the filter, true otherwise.
+     */
+    boolean containsMaybe(E element);
+
+    /**
+     * Reset the state of the filter, so that it contains no elements.
+     */
+    void reset();
+
+    /**
+     * Serialize this filter into the data output.
+     */
+    void close(DataOutput output) throws IOException;
+
+    /**
+     * Expected false positive rate after the given number of distinct elements were added.
+     */
+    double expectedFpp(long insertions);
+
+    /**
+     * False positive rate of the filter in its current state, derived from the filter content alone (e.g. the
+     * fraction of set bits), so it also covers duplicate and removed elements.
+     */
+    double currentFpp();
+
+    /**
+     * Number of distinct elements that can be added before the expected false positive rate exceeds fpp.
+     */
+    long capacity(double fpp);
+
+    /**
+     * Create an empty filter of the same kind as this one, sized for the expected number of insertions and
+     * false positive rate.
+     */
+    MembershipFilter<E> newInstance(long expectedInsertions, double fpp);
+
+    /**
+     * Reset the filter and add all given elements.
+     */
+    default void rebuild(Collection<? extends E> elements) {
+        reset();
+        for (E e : elements) {
+            add(e);
+        }
+    }
+
+    /**
+     * Returns true, if single elements can be added with {@link #add(Object)}; false for static filters,
+     * which must be built with {@link #rebuild(Collection)}.
+     */
+    default boolean supportsAdd() {
+        return true;
+    }
+
+    /**
+     * Returns true, if elements can be removed with {@link #remove(Object)}.
+     */
+    default boolean supportsRemove() {
+        return false;
+    }
+
+    /**
+     * Remove an element that was added before. Returns false (and leaves the filter unchanged),
+     * if the element was definitely not contained.
+     *
+     * @throws UnsupportedOperationException if the filter does not support removals
+     */
+    default boolean remove(E element) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support removals");
+    }
+}
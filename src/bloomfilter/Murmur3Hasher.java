@@ -0,0 +1,169 @@
+package bloomfilter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming implementation of MurmurHash3 x64 128, seeded with a 64-bit seed (h1 = h2 = seed).
+ * Data is consumed in 16-byte chunks; call {@link #finish()} once before reading {@link #h1()} and {@link #h2()}.
+ */
+final class Murmur3Hasher implements PrimitiveSink {
+    private static final int CHUNK_SIZE = 16;
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    /**
+     * Holds up to one chunk plus one primitive value that did not fit into it.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE + Long.BYTES - 1).order(ByteOrder.LITTLE_ENDIAN);
+    private long h1;
+    private long h2;
+    private long length;
+
+    Murmur3Hasher(long seed) {
+        this.h1 = seed;
+        this.h2 = seed;
+    }
+
+    /**
+     * Hash an element with the given funnel and seed.
+     */
+    static <T> Murmur3Hasher hash(Funnel<? super T> funnel, T element, long seed) {
+        Murmur3Hasher hasher = new Murmur3Hasher(seed);
+        funnel.funnel(element, hasher);
+        hasher.finish();
+        return hasher;
+    }
+
+    long h1() {
+        return h1;
+    }
+
+    long h2() {
+        return h2;
+    }
+
+    @Override
+    public PrimitiveSink putByte(byte b) {
+        buffer.put(b);
+        munchIfFull();
+        return this;
+    }
+
+    @Override
+    public PrimitiveSink putBytes(byte[] bytes, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            buffer.put(bytes[offset + i]);
+            munchIfFull();
+        }
+        return this;
+    }
+
+    @Override
+    public PrimitiveSink putInt(int i) {
+        buffer.putInt(i);
+        munchIfFull();
+        return this;
+    }
+
+    @Override
+    public PrimitiveSink putLong(long l) {
+        buffer.putLong(l);
+        munchIfFull();
+        return this;
+    }
+
+    @Override
+    public PrimitiveSink putChars(CharSequence chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            buffer.putChar(chars.charAt(i));
+            munchIfFull();
+        }
+        return this;
+    }
+
+    /**
+     * Process the buffered chunk once there may not be room for another long.
+     */
+    private void munchIfFull() {
+        if (buffer.remaining() < Long.BYTES) {
+            munch();
+        }
+    }
+
+    private void munch() {
+        buffer.flip();
+        while (buffer.remaining() >= CHUNK_SIZE) {
+            mixChunk(buffer.getLong(), buffer.getLong());
+            length += CHUNK_SIZE;
+        }
+        buffer.compact();
+    }
+
+    private void mixChunk(long k1, long k2) {
+        h1 ^= mixK1(k1);
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        h2 ^= mixK2(k2);
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    /**
+     * Process the remaining bytes and compute the final hash.
+     */
+    void finish() {
+        munch();
+        buffer.flip();
+        int remaining = buffer.remaining();
+        if (remaining > 0) {
+            long k1 = 0;
+            long k2 = 0;
+            for (int i = 0; i < remaining; i++) {
+                long b = buffer.get(i) & 0xffL;
+                if (i < Long.BYTES) {
+                    k1 ^= b << (i * Byte.SIZE);
+                } else {
+                    k2 ^= b << ((i - Long.BYTES) * Byte.SIZE);
+                }
+            }
+            h1 ^= mixK1(k1);
+            h2 ^= mixK2(k2);
+            length += remaining;
+        }
+        buffer.clear();
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
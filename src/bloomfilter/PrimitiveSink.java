@@ -0,0 +1,23 @@
+package bloomfilter;
+
+/**
+ * Receives the primitive values that make up an element, see {@link Funnel}.
+ */
+public interface PrimitiveSink {
+    PrimitiveSink putByte(byte b);
+
+    PrimitiveSink putBytes(byte[] bytes, int offset, int length);
+
+    default PrimitiveSink putBytes(byte[] bytes) {
+        return putBytes(bytes, 0, bytes.length);
+    }
+
+    PrimitiveSink putInt(int i);
+
+    PrimitiveSink putLong(long l);
+
+    /**
+     * Put the UTF-16 code units of the sequence, without any length prefix or charset encoding.
+     */
+    PrimitiveSink putChars(CharSequence chars);
+}
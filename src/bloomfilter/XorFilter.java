@@ -0,0 +1,282 @@
+package bloomfilter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A static xor filter (Graf and Lemire, 2020) with 8-bit fingerprints: about 9.84 bits per element and a
+ * false positive rate of about 1/256, i.e. roughly 20% smaller than a bloom filter with the same rate,
+ * and every lookup reads exactly three bytes.
+ * <p>
+ * The filter is built from a complete set of elements with {@link #rebuild(Collection)} (or {@link #build}),
+ * and single elements cannot be added; see {@link MembershipFilter#supportsAdd()}.
+ */
+public class XorFilter<E> implements MembershipFilter<E> {
+    static final int MAGIC = 0x584f5238;
+
+    /**
+     * Number of slots per element, plus a constant number of extra slots; enough for construction to succeed
+     * with high probability.
+     */
+    private static final double SLOTS_PER_ELEMENT = 1.23;
+    private static final int EXTRA_SLOTS = 32;
+
+    /**
+     * Number of attempts (with different seeds) before construction gives up.
+     */
+    private static final int MAX_ATTEMPTS = 100;
+
+    private static final double FPP = 1.0 / 256;
+
+    private final Funnel<? super E> funnel;
+
+    /**
+     * Seed of the element hash; fixed, so that the per-element keys can be computed before construction.
+     */
+    private final long keySeed;
+
+    /**
+     * Seed of the current construction, mixed into the keys.
+     */
+    private long seed;
+    private int blockLength;
+
+    /**
+     * 3 * blockLength fingerprint slots; null if the filter is empty.
+     */
+    private byte[] fingerprints;
+
+    /**
+     * Create an empty filter, whose elements are hashed with the funnel (or by their hashCode, if it is null).
+     */
+    public XorFilter(long keySeed, Funnel<? super E> funnel) {
+        this.keySeed = keySeed;
+        this.funnel = funnel;
+    }
+
+    /**
+     * Read a filter that was serialized with {@link #close(DataOutput)}, and was created with the given funnel
+     * (or without one, if it is null).
+     */
+    public XorFilter(DataInput input, Funnel<? super E> funnel) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a xor filter");
+        }
+        if (input.readBoolean() != (funnel != null)) {
+            throw new IllegalArgumentException("Funnel does not match the serialized filter");
+        }
+
+        this.funnel = funnel;
+        this.keySeed = input.readLong();
+        this.seed = input.readLong();
+        this.blockLength = input.readInt();
+        if (blockLength < 0) {
+            throw new IOException("Corrupt xor filter header: block length " + blockLength);
+        }
+        if (blockLength > 0) {
+            this.fingerprints = new byte[3 * blockLength];
+            input.readFully(fingerprints);
+        }
+    }
+
+    /**
+     * Build a filter from the given elements.
+     */
+    public static <E> XorFilter<E> build(Funnel<? super E> funnel, Collection<? extends E> elements) {
+        XorFilter<E> filter = new XorFilter<>(0L, funnel);
+        filter.rebuild(elements);
+        return filter;
+    }
+
+    @Override
+    public void close(DataOutput output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeBoolean(funnel != null);
+        output.writeLong(keySeed);
+        output.writeLong(seed);
+        output.writeInt(fingerprints == null ? 0 : blockLength);
+        if (fingerprints != null) {
+            output.write(fingerprints);
+        }
+    }
+
+    /**
+     * Not supported; the filter has to be rebuilt from the complete set of elements.
+     */
+    @Override
+    public void add(E element) {
+        throw new UnsupportedOperationException("Xor filters are static; use rebuild");
+    }
+
+    @Override
+    public boolean supportsAdd() {
+        return false;
+    }
+
+    @Override
+    public boolean containsMaybe(E element) {
+        if (fingerprints == null) {
+            return false;
+        }
+        long hash = HashStrategy.mix64(HashStrategy.hash64(element, funnel, keySeed) + seed);
+        return fingerprint(hash) == (fingerprints[slot(hash, 0)] ^ fingerprints[slot(hash, 1)]
+                ^ fingerprints[slot(hash, 2)]);
+    }
+
+    @Override
+    public void reset() {
+        fingerprints = null;
+        blockLength = 0;
+    }
+
+    /**
+     * Build the filter from the given elements, replacing its previous content. Duplicates are ignored.
+     */
+    @Override
+    public void rebuild(Collection<? extends E> elements) {
+        long[] keys = new long[elements.size()];
+        int n = 0;
+        for (E e : elements) {
+            keys[n++] = HashStrategy.hash64(e, funnel, keySeed);
+        }
+        keys = distinct(keys, n);
+        if (keys.length == 0) {
+            reset();
+            return;
+        }
+
+        int blockLength = (int) Math.ceil((SLOTS_PER_ELEMENT * keys.length + EXTRA_SLOTS) / 3);
+        long[] order = new long[keys.length];
+        byte[] orderSlot = new byte[keys.length];
+        long seed = keySeed;
+        for (int attempt = 0; ; attempt++) {
+            if (attempt == MAX_ATTEMPTS) {
+                throw new IllegalStateException("Could not construct xor filter for " + keys.length + " keys");
+            }
+
+            seed = HashStrategy.mix64(seed + HashStrategy.GOLDEN_GAMMA);
+            this.seed = seed;
+            this.blockLength = blockLength;
+            if (peel(keys, order, orderSlot)) {
+                break;
+            }
+        }
+        assign(order, orderSlot);
+    }
+
+    /**
+     * Sorted distinct values of keys[0, n).
+     */
+    private static long[] distinct(long[] keys, int n) {
+        Arrays.sort(keys, 0, n);
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (m == 0 || keys[i] != keys[m - 1]) {
+                keys[m++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, m);
+    }
+
+    /**
+     * Find an order in which every key is the only one left in one of its three slots. Returns false if the
+     * keys form a cycle for the current seed.
+     */
+    private boolean peel(long[] keys, long[] order, byte[] orderSlot) {
+        int size = 3 * blockLength;
+        long[] xorHashes = new long[size];
+        int[] counts = new int[size];
+        for (long key : keys) {
+            long hash = HashStrategy.mix64(key + seed);
+            for (int h = 0; h < 3; h++) {
+                int slot = slot(hash, h);
+                xorHashes[slot] ^= hash;
+                counts[slot]++;
+            }
+        }
+
+        int[] queue = new int[size];
+        int queueSize = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (counts[slot] == 1) {
+                queue[queueSize++] = slot;
+            }
+        }
+
+        int found = 0;
+        while (queueSize > 0) {
+            int slot = queue[--queueSize];
+            if (counts[slot] != 1) {
+                continue;
+            }
+            long hash = xorHashes[slot];
+            order[found] = hash;
+            for (int h = 0; h < 3; h++) {
+                int other = slot(hash, h);
+                if (other == slot) {
+                    orderSlot[found] = (byte) h;
+                }
+                xorHashes[other] ^= hash;
+                if (--counts[other] == 1) {
+                    queue[queueSize++] = other;
+                }
+            }
+            found++;
+        }
+        return found == keys.length;
+    }
+
+    /**
+     * Assign the fingerprints in reverse peeling order, so that the three slots of every key xor to its
+     * fingerprint.
+     */
+    private void assign(long[] order, byte[] orderSlot) {
+        byte[] fingerprints = new byte[3 * blockLength];
+        for (int i = order.length - 1; i >= 0; i--) {
+            long hash = order[i];
+            int own = slot(hash, orderSlot[i]);
+            fingerprints[own] = (byte) (fingerprint(hash) ^ fingerprints[slot(hash, 0)]
+                    ^ fingerprints[slot(hash, 1)] ^ fingerprints[slot(hash, 2)]);
+        }
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Slot of the h-th hash function (0, 1, 2); each hash function has its own block of slots.
+     */
+    private int slot(long hash, int h) {
+        long r = Long.rotateLeft(hash, 21 * h);
+        return (int) (((r & 0xffffffffL) * blockLength) >>> 32) + h * blockLength;
+    }
+
+    private static int fingerprint(long hash) {
+        return (byte) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * The false positive rate of a xor filter does not depend on the number of elements, since it is always
+     * built for exactly its elements.
+     */
+    @Override
+    public double expectedFpp(long insertions) {
+        return FPP;
+    }
+
+    @Override
+    public double currentFpp() {
+        return fingerprints == null ? 0.0 : FPP;
+    }
+
+    @Override
+    public long capacity(double fpp) {
+        return fpp >= FPP ? Long.MAX_VALUE : 0;
+    }
+
+    @Override
+    public XorFilter<E> newInstance(long expectedInsertions, double fpp) {
+        return new XorFilter<>(keySeed, funnel);
+    }
+}